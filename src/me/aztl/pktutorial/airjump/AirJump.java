@@ -16,6 +16,9 @@ import com.projectkorra.projectkorra.attribute.Attribute;
 import com.projectkorra.projectkorra.configuration.ConfigManager;
 import com.projectkorra.projectkorra.util.ClickType;
 
+import me.aztl.pktutorial.stats.AbilityStats;
+import me.aztl.pktutorial.stats.AbilityStats.Stat;
+
 /**
  * AirJump is an addon ability that was made a few years ago.
  * Here, I'm making my own simplistic version to demonstrate how combos work
@@ -126,8 +129,12 @@ public class AirJump extends AirAbility implements AddonAbility, ComboAbility {
 		 * it would still add the cooldown because it's in the same code block.
 		 * We want it to add the cooldown only if it's not cancelled.
 		 */
-		if (!isRemoved())
+		if (!isRemoved()) {
 			bPlayer.addCooldown(this);
+			// See the AbilityStats class. AirJump is a combo, so every activation is also a completed combo.
+			AbilityStats.add(player, this, Stat.ACTIVATIONS, 1);
+			AbilityStats.add(player, this, Stat.COMBOS, 1);
+		}
 	}
 
 	/**
@@ -315,6 +322,9 @@ public class AirJump extends AirAbility implements AddonAbility, ComboAbility {
 		// Default cooldown of 5000 milliseconds, or 5 seconds
 		ConfigManager.getConfig().addDefault("ExtraAbilities.Aztl.AirJump.Cooldown", 5000);
 		
+		// Only loads the first time, so it doesn't matter that WaterTendril calls this too
+		AbilityStats.load();
+		
 		// Run enabled messages at the end of methods, not the beginning, because if something goes wrong, the "successful" message won't run.
 		ProjectKorra.plugin.getLogger().info(getName() + " " + getVersion() + " by " + getAuthor() + " has been successfully enabled.");
 	}
@@ -326,6 +336,8 @@ public class AirJump extends AirAbility implements AddonAbility, ComboAbility {
 	public void stop() {
 		// remove in case of server stop
 		remove();
+		// Saves the stats one last time
+		AbilityStats.unload();
 	}
 	
 	// Methods that you may have to add manually
@@ -0,0 +1,234 @@
+package me.aztl.pktutorial.stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import com.projectkorra.projectkorra.ProjectKorra;
+import com.projectkorra.projectkorra.ability.CoreAbility;
+
+/**
+ * AbilityStats keeps track of how much each player uses our abilities.
+ * It isn't an ability, just a helper that the abilities call,
+ * so it doesn't extend anything.
+ */
+
+/*
+ * Abilities run on the main thread every tick, so we never want them to wait on a file.
+ * Instead, add() only changes numbers in memory, and every minute a thread of our own writes
+ * everything to plugins/ProjectKorra/aztl-stats.yml. This is called "write-behind".
+ * That thread never touches blocks or entities (see the README), only our own map,
+ * so it's safe to run off the main thread.
+ * The thread comes from a ScheduledExecutorService that AbilityStats owns, so we decide exactly
+ * when it starts and stops, and it's a daemon thread so it can never keep the server from shutting down.
+ * If the server crashes, at most the last minute of stats is lost, which is fine for stats.
+ */
+public class AbilityStats {
+
+	/*
+	 * An enum is a fixed set of options, like ClickType or ParticleEffect.
+	 * We use each Stat's ordinal() (its position in the list) as an index into a double[],
+	 * which is much cheaper than a Map for every single counter.
+	 */
+	public enum Stat {
+		ACTIVATIONS, HITS, DAMAGE, COMBOS
+	}
+
+	// How often to write to the file, in seconds
+	private static final long SAVE_INTERVAL = 60;
+
+	/*
+	 * The key is "<uuid>.<ability name>", which is also the path we save it under in the file.
+	 * Everything is static because there is only one set of stats, no matter how many abilities use it.
+	 * Every method that reads or writes it is synchronized, because the save thread reads it too.
+	 */
+	private static final Map<String, double[]> stats = new HashMap<>();
+	private static boolean dirty;
+	private static ScheduledExecutorService saver;
+	private static final Object fileLock = new Object();
+
+	/*
+	 * A copy of all the stats as of the last save, plus the leaderboards sorted from that copy.
+	 * Sorting every player is too slow to do every time someone looks at a leaderboard,
+	 * so each leaderboard is only sorted the first time it's asked for, then reused.
+	 * save() replaces the whole Snapshot, so leaderboards are at most one save old.
+	 * It's volatile because the save thread replaces it while the main thread reads it.
+	 */
+	private static class Snapshot {
+		private final Map<String, double[]> stats;
+		private final Map<String, List<Map.Entry<UUID, Double>>> leaderboards = new ConcurrentHashMap<>();
+
+		private Snapshot(Map<String, double[]> stats) {
+			this.stats = stats;
+		}
+	}
+
+	private static volatile Snapshot snapshot = new Snapshot(new HashMap<>());
+
+	/**
+	 * Loads the stats file and starts the save thread. Call this in your ability's load().
+	 * Several abilities call this, so it only does something the first time.
+	 */
+	public static synchronized void load() {
+		if (saver != null) return;
+
+		YamlConfiguration file = YamlConfiguration.loadConfiguration(getFile());
+		for (String uuid : file.getKeys(false)) {
+			ConfigurationSection player = file.getConfigurationSection(uuid);
+			// Someone may have edited the file by hand
+			if (player == null) continue;
+			for (String ability : player.getKeys(false)) {
+				double[] values = new double[Stat.values().length];
+				for (Stat stat : Stat.values()) {
+					values[stat.ordinal()] = player.getDouble(ability + "." + stat.name().toLowerCase(Locale.ROOT));
+				}
+				stats.put(uuid + "." + ability, values);
+			}
+		}
+		snapshot = new Snapshot(copyStats());
+
+		/*
+		 * A daemon thread doesn't stop the server from shutting down if unload() is never called.
+		 * We catch everything in the task, because a ScheduledExecutorService silently stops
+		 * repeating a task once it throws.
+		 */
+		saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "PKTutorial-AbilityStats");
+			thread.setDaemon(true);
+			return thread;
+		});
+		saver.scheduleWithFixedDelay(() -> {
+			try {
+				save();
+			} catch (RuntimeException e) {
+				ProjectKorra.plugin.getLogger().log(Level.WARNING, "Could not save ability stats", e);
+			}
+		}, SAVE_INTERVAL, SAVE_INTERVAL, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops the save thread and saves one last time. Call this in your ability's stop().
+	 */
+	public static void unload() {
+		synchronized (AbilityStats.class) {
+			if (saver == null) return;
+			saver.shutdown();
+			saver = null;
+		}
+		save();
+	}
+
+	/**
+	 * Adds an amount to one of a player's stats for an ability.
+	 * This only changes memory, so it's safe to call from progress() every tick.
+	 */
+	public static synchronized void add(Player player, CoreAbility ability, Stat stat, double amount) {
+		stats.computeIfAbsent(player.getUniqueId() + "." + ability.getName(), key -> new double[Stat.values().length])[stat.ordinal()] += amount;
+		dirty = true;
+	}
+
+	/**
+	 * Returns one of a player's stats for an ability, for example to show in a command.
+	 * This reads from memory, never from the file.
+	 */
+	public static synchronized double get(UUID uuid, String ability, Stat stat) {
+		double[] values = stats.get(uuid + "." + ability);
+		return values == null ? 0 : values[stat.ordinal()];
+	}
+
+	/**
+	 * Returns the n players with the highest value of a stat for an ability, highest first.
+	 * This is served from the last save's Snapshot, so it can be up to a minute behind get().
+	 */
+	public static List<Map.Entry<UUID, Double>> top(String ability, Stat stat, int n) {
+		// Read snapshot once, so the leaderboard is sorted from the same Snapshot it's stored in
+		Snapshot current = snapshot;
+		List<Map.Entry<UUID, Double>> leaderboard = current.leaderboards.computeIfAbsent(ability + "." + stat.name(), key -> sortLeaderboard(current.stats, ability, stat));
+		return leaderboard.subList(0, Math.min(n, leaderboard.size()));
+	}
+
+	private static List<Map.Entry<UUID, Double>> sortLeaderboard(Map<String, double[]> stats, String ability, Stat stat) {
+		List<Map.Entry<UUID, Double>> leaderboard = new ArrayList<>();
+		for (Map.Entry<String, double[]> entry : stats.entrySet()) {
+			// Keys are "<uuid>.<ability name>", and UUIDs never contain a dot
+			int dot = entry.getKey().indexOf('.');
+			if (!entry.getKey().substring(dot + 1).equals(ability)) continue;
+
+			UUID uuid;
+			try {
+				uuid = UUID.fromString(entry.getKey().substring(0, dot));
+			} catch (IllegalArgumentException e) {
+				// Someone may have edited the file by hand
+				continue;
+			}
+			leaderboard.add(new AbstractMap.SimpleImmutableEntry<>(uuid, entry.getValue()[stat.ordinal()]));
+		}
+		leaderboard.sort(Map.Entry.<UUID, Double>comparingByValue().reversed());
+		return Collections.unmodifiableList(leaderboard);
+	}
+
+	// Must be called while holding the AbilityStats.class lock
+	private static Map<String, double[]> copyStats() {
+		Map<String, double[]> copy = new HashMap<>();
+		for (Map.Entry<String, double[]> entry : stats.entrySet()) {
+			copy.put(entry.getKey(), entry.getValue().clone());
+		}
+		return copy;
+	}
+
+	/*
+	 * Only copies the numbers while holding the lock (quick), then builds and writes the file
+	 * after letting go of it (slow), so abilities never wait for either.
+	 * fileLock makes sure the save thread and unload() never write the file at the same time.
+	 */
+	private static void save() {
+		synchronized (fileLock) {
+			Map<String, double[]> copy;
+			synchronized (AbilityStats.class) {
+				if (!dirty) return;
+				dirty = false;
+				copy = copyStats();
+			}
+			// Nothing changes copy after this, so leaderboards can safely read it
+			snapshot = new Snapshot(copy);
+
+			YamlConfiguration file = new YamlConfiguration();
+			for (Map.Entry<String, double[]> entry : copy.entrySet()) {
+				for (Stat stat : Stat.values()) {
+					file.set(entry.getKey() + "." + stat.name().toLowerCase(Locale.ROOT), entry.getValue()[stat.ordinal()]);
+				}
+			}
+
+			try {
+				file.save(getFile());
+			} catch (IOException e) {
+				// Try again next time, even if no stats change before then
+				synchronized (AbilityStats.class) {
+					dirty = true;
+				}
+				ProjectKorra.plugin.getLogger().log(Level.WARNING, "Could not save ability stats", e);
+			}
+		}
+	}
+
+	private static File getFile() {
+		return new File(ProjectKorra.plugin.getDataFolder(), "aztl-stats.yml");
+	}
+
+}
@@ -1,11 +1,19 @@
 package me.aztl.pktutorial.watertendril;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.util.Vector;
 
 import com.projectkorra.projectkorra.GeneralMethods;
@@ -20,6 +28,9 @@ import com.projectkorra.projectkorra.util.DamageHandler;
 import com.projectkorra.projectkorra.util.ParticleEffect;
 import com.projectkorra.projectkorra.util.TempBlock;
 
+import me.aztl.pktutorial.stats.AbilityStats;
+import me.aztl.pktutorial.stats.AbilityStats.Stat;
+
 /**
  * WaterTendril is a long line of water, very similar to a WaterArms Spear.
  * Water is the element of TempBlocks. We'll be using PK's TempBlock class
@@ -35,6 +46,20 @@ import com.projectkorra.projectkorra.util.TempBlock;
  */
 public class WaterTendril extends WaterAbility implements AddonAbility {
 
+	// A move of at most 1 block on each axis passes through at most 2 new blocks per axis
+	private static final int MAX_BLOCKS_PER_MOVE = 6;
+
+	/*
+	 * Tendrils that have a source selected but haven't been launched yet, by player UUID.
+	 * Players can hold a source for a long time before they click, and there's nothing to move
+	 * until they do, so we don't call start() until then (see onClick()). That way PK doesn't call
+	 * progress() on them every tick. Instead, one task (see checkDormant()) looks after all of them
+	 * every few ticks.
+	 * Everything here is only used on the main thread, so a plain HashMap is fine.
+	 */
+	private static final Map<UUID, WaterTendril> dormant = new HashMap<>();
+	private static BukkitTask dormantTask;
+
 	/*
 	 * I usually separate my instance variables into two sections,
 	 * configurable values, and non-configurable values.
@@ -56,15 +81,6 @@ public class WaterTendril extends WaterAbility implements AddonAbility {
 	// We'll use two Location variables to test for going out of range.
 	private Location origin;
 	private Vector direction;
-	/*
-	 * You can use booleans to demarcate states of abilities.
-	 * "Progressing" is a common name for one of these booleans.
-	 * This is false if the player has selected a source but hasn't yet launched the tendril,
-	 * and true if they've launched the tendril.
-	 * Our onClick() method sets this to true, which allows progress()
-	 * to access more code, launching the tendril.
-	 */
-	private boolean progressing;
 	/**
 	 * This boolean checks if the tendril has reached the player's eye level.
 	 */
@@ -83,6 +99,20 @@ public class WaterTendril extends WaterAbility implements AddonAbility {
 	 * so if speed is configurable you might be better off using distanceSquared.
 	 */
 	private int travelled;
+	/*
+	 * Only used when the tendril isn't controllable. Once it reaches eye level its path can't change,
+	 * so computePath() works out every block it will pass through, once.
+	 * path holds the x, y, z of each block one after another, and pathSteps[i] is where
+	 * the blocks for the i-th move end in path. pathStep is the move we're on.
+	 * Plain int arrays take up far less memory than a List of Blocks or Locations.
+	 */
+	private int[] path;
+	private int[] pathSteps;
+	private int pathStep;
+	// True if computePath() cut the path short because it reached a chunk that isn't loaded
+	private boolean pathUnloaded;
+	// advance() reuses this every tick instead of making a new array each time
+	private final int[] moveBlocks = new int[MAX_BLOCKS_PER_MOVE * 3];
 	
 	public WaterTendril(Player player) {
 		super(player);
@@ -95,19 +125,15 @@ public class WaterTendril extends WaterAbility implements AddonAbility {
 		
 		/**
 		 * Simple way to check if they already have an active instance of WaterTendril
-		 * If they do (i.e. the ability is not null), and that other instance is already
-		 * progressing (the tendril is launching), we don't go through with this instance.
-		 * In any other case (i.e. progressing == false and we haven't launched that tendril yet),
-		 * we remove that old instance. This is how re-sourcing works.
+		 * Only launched tendrils are started, so if they have one, it's already launching
+		 * and we don't go through with this instance.
+		 * If they have a dormant tendril instead (a source selected but not launched yet),
+		 * we forget that old one. This is how re-sourcing works.
 		 * Players can safely change the block their source is on without going into a cooldown
 		 * or whatever.
 		 */
-		WaterTendril wt = getAbility(player, WaterTendril.class);
-		if (wt != null) {
-			if (wt.progressing)
-				return;
-			wt.remove();
-		}
+		if (hasAbility(player, WaterTendril.class)) return;
+		dormant.remove(player.getUniqueId());
 		
 		// Setting fields
 		cooldown = ConfigManager.getConfig().getLong("ExtraAbilities.Aztl.WaterTendril.Cooldown");
@@ -155,10 +181,13 @@ public class WaterTendril extends WaterAbility implements AddonAbility {
 		// Cloned because we want to change location without changing origin
 		location = origin.clone();
 		// Even though all instance booleans are false by default, it's often still good to be clear about it.
-		progressing = false;
 		eyeLevel = false;
 		
-		start();
+		/*
+		 * Notice we don't call start() here! The tendril waits in the dormant map
+		 * until the player clicks, and onClick() starts it.
+		 */
+		dormant.put(player.getUniqueId(), this);
 	}
 
 	@Override
@@ -179,32 +208,13 @@ public class WaterTendril extends WaterAbility implements AddonAbility {
 			return;
 		}
 		
-		if (!progressing) {
-			// "progressing" is false when the ability starts, so every WaterTendril
-			// that is just starting will have access to this code.
-			
-			/*
-			 * ParticleEffect is an enum, which has a set of options to choose from
-			 * Here we display the SMOKE_NORMAL particle 4 times at the origin,
-			 * which creates the "focus water effect".
-			 * There's also WaterAbility#playFocusWaterEffect which takes a Block parameter
-			 * and does the same exact thing, but here we have a Location so this is easier.
-			 */
-			ParticleEffect.SMOKE_NORMAL.display(origin, 4);
-			/*
-			 * Returning here means it won't go through with the rest of the method
-			 * (i.e. the parts that require progressing to be true, or the tendril to be launching.)
-			 * It's one way of doing this; the other way is to have the rest of the method
-			 * be in an else statement (if !progressing is not the case, progressing must be true).
-			 * There's no difference to Java, but I think having your whole method in an else block
-			 * is a detriment to readability most of the time.
-			 */
-			return;
-		}
-		
 		if (!eyeLevel && location.getBlockY() >= player.getEyeLocation().getBlockY()) {
 			eyeLevel = true;
 			direction = player.getEyeLocation().getDirection();
+			// From here on a non-controllable tendril always goes the same way, so we can work out its path now
+			if (!controllable) {
+				computePath();
+			}
 		}
 		
 		/*
@@ -216,25 +226,43 @@ public class WaterTendril extends WaterAbility implements AddonAbility {
 			direction = player.getEyeLocation().getDirection();
 		}
 		
+		/*
+		 * advance() and followPath() move the location and create the water blocks along the way.
+		 * It returns false if the tendril ran into a solid block, in which case we remove.
+		 */
+		boolean moved;
 		if (!eyeLevel) {
-			// Add location upwards until we get to eye level
-			location.add(0, 1, 0);
+			// Move location upwards until we get to eye level
+			moved = advance(0, 1, 0);
+		} else if (path != null) {
+			// Not controllable, so just follow the path we already worked out
+			moved = followPath();
 		} else {
 			// Move location in the launching direction
-			location.add(direction);
+			moved = advance(direction.getX(), direction.getY(), direction.getZ());
 		}
-		// The following line does the same thing as above but quicker:
-		// location.add(eyeLevel ? direction : new Vector(0, 1, 0));
-		
+
+		if (!moved) {
+			/*
+			 * A controllable tendril would just keep going into an unloaded chunk (loading it),
+			 * so if a precomputed path ended only because of that, it isn't the player's fault.
+			 * We remove without a cooldown in that case.
+			 */
+			if (path != null && pathStep >= pathSteps.length && pathUnloaded) {
+				remove();
+			} else {
+				removeWithCooldown();
+			}
+			return;
+		}
+
 		// Increase travelled by 1 every time we move the Location by 1 block
 		travelled++;
-		
-		// Create a water block at the location with a revert time of 100 milliseconds
-		TempBlock tb = new TempBlock(location.getBlock(), Material.WATER);
-		tb.setRevertTime(100);
-		
+
 		// Use this method for hit radii. It detects for entities in a sphere around the location within a given radius.
 		// Not the only way to detect entities but the most common way.
+		// "hit" makes sure we only count one hit in our stats, even if we damage several entities this tick.
+		boolean hit = false;
 		for (Entity e : GeneralMethods.getEntitiesAroundPoint(location, hitRadius)) {
 			/*
 			 * Checks to make sure the player doesn't hit themselves.
@@ -252,6 +280,12 @@ public class WaterTendril extends WaterAbility implements AddonAbility {
 				// even though the parameter of this method just uses Entity
 				if (e instanceof LivingEntity) {
 					DamageHandler.damageEntity(e, damage, this);
+					// Only living entities count as hits, not dropped items, arrows, etc.
+					if (!hit) {
+						hit = true;
+						AbilityStats.add(player, this, Stat.HITS, 1);
+						AbilityStats.add(player, this, Stat.DAMAGE, damage);
+					}
 				}
 				// Knockback would go here if we wanted to add knockback
 				
@@ -261,6 +295,175 @@ public class WaterTendril extends WaterAbility implements AddonAbility {
 		}
 	}
 	
+	/**
+	 * Finds every block a line from (fromX, fromY, fromZ) moving by (dx, dy, dz) passes through.
+	 *
+	 * If we only used location.add() and location.getBlock(), a tendril moving diagonally
+	 * would skip over blocks (leaving gaps in the water and letting it slip through corners of walls).
+	 * Instead we walk the line one block at a time, always stepping into whichever neighbouring
+	 * block the line reaches first. This is known as a DDA (Amanatides-Woo) traversal.
+	 * "tMax" is how far along the move (0 to 1) the line crosses the next block boundary on each axis,
+	 * and "tDelta" is how far along the move it takes to cross one whole block on that axis.
+	 *
+	 * The blocks are written into an int[] as x, y, z, one block after another, starting at index.
+	 * This method doesn't touch the world at all, so we can use it both for moving the tendril
+	 * one tick at a time in advance() and for working out a whole path ahead of time in computePath().
+	 *
+	 * @return the index after the last block written
+	 */
+	private static int traverse(double fromX, double fromY, double fromZ, double dx, double dy, double dz, int[] blocks, int index) {
+		int x = Location.locToBlock(fromX), y = Location.locToBlock(fromY), z = Location.locToBlock(fromZ);
+
+		int stepX = dx > 0 ? 1 : -1, stepY = dy > 0 ? 1 : -1, stepZ = dz > 0 ? 1 : -1;
+		double tDeltaX = dx == 0 ? Double.MAX_VALUE : Math.abs(1 / dx);
+		double tDeltaY = dy == 0 ? Double.MAX_VALUE : Math.abs(1 / dy);
+		double tDeltaZ = dz == 0 ? Double.MAX_VALUE : Math.abs(1 / dz);
+		double tMaxX = dx == 0 ? Double.MAX_VALUE : (dx > 0 ? x + 1 - fromX : fromX - x) * tDeltaX;
+		double tMaxY = dy == 0 ? Double.MAX_VALUE : (dy > 0 ? y + 1 - fromY : fromY - y) * tDeltaY;
+		double tMaxZ = dz == 0 ? Double.MAX_VALUE : (dz > 0 ? z + 1 - fromZ : fromZ - z) * tDeltaZ;
+
+		boolean entered = false;
+		while (true) {
+			// Step into the next block on whichever axis crosses its boundary first
+			if (tMaxX <= tMaxY && tMaxX <= tMaxZ) {
+				if (tMaxX > 1) break;
+				x += stepX;
+				tMaxX += tDeltaX;
+			} else if (tMaxY <= tMaxZ) {
+				if (tMaxY > 1) break;
+				y += stepY;
+				tMaxY += tDeltaY;
+			} else {
+				if (tMaxZ > 1) break;
+				z += stepZ;
+				tMaxZ += tDeltaZ;
+			}
+			entered = true;
+
+			blocks[index++] = x;
+			blocks[index++] = y;
+			blocks[index++] = z;
+		}
+
+		// A short diagonal move can stay inside the same block, so keep the head of the tendril wet
+		if (!entered) {
+			blocks[index++] = x;
+			blocks[index++] = y;
+			blocks[index++] = z;
+		}
+		return index;
+	}
+
+	/**
+	 * Moves the location by (dx, dy, dz) and turns every block it passes through into water.
+	 *
+	 * @return false if a solid block is in the way
+	 */
+	private boolean advance(double dx, double dy, double dz) {
+		World world = location.getWorld();
+		int length = traverse(location.getX(), location.getY(), location.getZ(), dx, dy, dz, moveBlocks, 0);
+
+		for (int i = 0; i < length; i += 3) {
+			if (!placeWater(world.getBlockAt(moveBlocks[i], moveBlocks[i + 1], moveBlocks[i + 2]))) return false;
+		}
+
+		location.add(dx, dy, dz);
+		return true;
+	}
+
+	/**
+	 * Works out every block the tendril will pass through for the rest of its range.
+	 * Only used when the tendril isn't controllable, because then the direction can't change anymore.
+	 *
+	 * The path stops early at a chunk that isn't loaded. Calling getBlockAt() on an unloaded chunk
+	 * would load it, which is slow, and no tendril is worth that. This is different from a controllable
+	 * tendril, which keeps going (and loads the chunk), so when the tendril reaches the end of a path
+	 * that was cut short like this, progress() removes it without a cooldown.
+	 * We don't check for solid blocks here. A block in the way now could be gone by the time the tendril
+	 * gets there (a TempBlock reverting, a door opening), and followPath() checks every block then anyway.
+	 */
+	private void computePath() {
+		World world = location.getWorld();
+		// progress() keeps moving the tendril until travelled > range, so this is how many moves are left
+		int moves = Math.max(0, (int) range - travelled + 1);
+
+		path = new int[moves * MAX_BLOCKS_PER_MOVE * 3];
+		pathSteps = new int[moves];
+		pathStep = 0;
+
+		double x = location.getX(), y = location.getY(), z = location.getZ();
+		int length = 0;
+		int count = 0;
+		/*
+		 * Chunks are 16x16 blocks, so most blocks are in the same chunk as the one before them.
+		 * We only ask the world about a chunk when the path moves into a different one.
+		 * The tendril is already in the chunk it starts in, so that one must be loaded.
+		 */
+		int chunkX = location.getBlockX() >> 4, chunkZ = location.getBlockZ() >> 4;
+		pathUnloaded = false;
+		while (count < moves && !pathUnloaded) {
+			int start = length;
+			length = traverse(x, y, z, direction.getX(), direction.getY(), direction.getZ(), path, length);
+
+			for (int i = start; i < length; i += 3) {
+				if (path[i] >> 4 == chunkX && path[i + 2] >> 4 == chunkZ) continue;
+
+				chunkX = path[i] >> 4;
+				chunkZ = path[i + 2] >> 4;
+				if (!world.isChunkLoaded(chunkX, chunkZ)) {
+					pathUnloaded = true;
+					break;
+				}
+			}
+			if (pathUnloaded) break;
+
+			pathSteps[count++] = length;
+			x += direction.getX();
+			y += direction.getY();
+			z += direction.getZ();
+		}
+
+		// Trim the arrays down to the part of the path the tendril can actually reach
+		pathSteps = Arrays.copyOf(pathSteps, count);
+		path = Arrays.copyOf(path, count == 0 ? 0 : pathSteps[count - 1]);
+	}
+
+	/**
+	 * Moves the location one step along the path from computePath() and turns those blocks into water.
+	 *
+	 * @return false if the path has ended (see computePath() for when that happens early)
+	 * or a solid block is in the way
+	 */
+	private boolean followPath() {
+		if (pathStep >= pathSteps.length) return false;
+
+		World world = location.getWorld();
+		int start = pathStep == 0 ? 0 : pathSteps[pathStep - 1];
+		for (int i = start; i < pathSteps[pathStep]; i += 3) {
+			// Someone could have placed a block since we computed the path, so placeWater still checks
+			if (!placeWater(world.getBlockAt(path[i], path[i + 1], path[i + 2]))) return false;
+		}
+
+		pathStep++;
+		location.add(direction);
+		return true;
+	}
+
+	/**
+	 * Creates a water block with a revert time of 100 milliseconds, unless the block is solid
+	 * or is already real water (placing a TempBlock there would do nothing useful).
+	 *
+	 * @return false if the block is solid
+	 */
+	private boolean placeWater(Block block) {
+		if (GeneralMethods.isSolid(block)) return false;
+		if (block.getType() == Material.WATER && !TempBlock.isTempBlock(block)) return true;
+
+		TempBlock tb = new TempBlock(block, Material.WATER);
+		tb.setRevertTime(100);
+		return true;
+	}
+
 	// public so that other classes can remove a WaterTendril if they need to
 	public void removeWithCooldown() {
 		remove();
@@ -269,7 +472,64 @@ public class WaterTendril extends WaterAbility implements AddonAbility {
 	
 	// public so that our Listener can access this
 	public void onClick() {
-		progressing = true;
+		// Only the dormant tendril can be launched, and only once
+		if (dormant.get(player.getUniqueId()) != this || !checkSource()) return;
+		dormant.remove(player.getUniqueId());
+		
+		// Now progress() starts being called every tick, launching the tendril
+		start();
+		if (!isRemoved()) {
+			AbilityStats.add(player, this, Stat.ACTIVATIONS, 1);
+		}
+	}
+	
+	/**
+	 * Checks if a dormant tendril can still be launched, and forgets it if it can't.
+	 * A dormant tendril was never started, so there's nothing to remove(); we just take it out of the map.
+	 */
+	private boolean checkSource() {
+		// Same as the canBend check in progress(), e.g. they're no longer on the WaterTendril slot
+		if (!player.isOnline() || !bPlayer.canBend(this)) {
+			cancelSource();
+			return false;
+		}
+		return true;
+	}
+	
+	// public so that our Listener can drop the source when the player changes slots
+	public void cancelSource() {
+		dormant.remove(player.getUniqueId(), this);
+		bPlayer.addCooldown(this);
+	}
+	
+	// Used by our Listener. Returns null if the player doesn't have a source selected.
+	public static WaterTendril getDormant(Player player) {
+		return dormant.get(player.getUniqueId());
+	}
+	
+	/*
+	 * Runs every 5 ticks for all dormant tendrils at once, instead of every tick for each one.
+	 * We loop over a copy because checkSource() can take tendrils out of the map.
+	 */
+	private static void checkDormant() {
+		for (WaterTendril wt : new ArrayList<>(dormant.values())) {
+			if (!wt.checkSource()) continue;
+			
+			/*
+			 * ParticleEffect is an enum, which has a set of options to choose from
+			 * Here we display the SMOKE_NORMAL particle 4 times at the origin,
+			 * which creates the "focus water effect".
+			 * There's also WaterAbility#playFocusWaterEffect which takes a Block parameter
+			 * and does the same exact thing, but here we have a Location so this is easier.
+			 *
+			 * You might be tempted to skip particles (or TempBlocks) when nobody is close enough to see them.
+			 * It isn't worth it here: the server only sends particles to nearby players anyway,
+			 * so an unwatched source costs little more than this one call every few ticks.
+			 * (Nothing stops the bender from walking away from a source they've selected, so don't assume
+			 * someone is always watching.) A launched tendril is gone after Range moves (about a second).
+			 */
+			ParticleEffect.SMOKE_NORMAL.display(wt.origin, 4);
+		}
 	}
 
 	@Override
@@ -331,12 +591,26 @@ public class WaterTendril extends WaterAbility implements AddonAbility {
 		// Registers events in your Listener, with ProjectKorra as its corresponding plugin
 		ProjectKorra.plugin.getServer().getPluginManager().registerEvents(new WaterTendrilListener(), ProjectKorra.plugin);
 		
+		// Only loads the first time, so it doesn't matter that AirJump calls this too
+		AbilityStats.load();
+		
+		// 5 ticks (4 times a second) is plenty to show players which block they've sourced
+		if (dormantTask == null) {
+			dormantTask = ProjectKorra.plugin.getServer().getScheduler().runTaskTimer(ProjectKorra.plugin, WaterTendril::checkDormant, 5, 5);
+		}
+		
 		ProjectKorra.plugin.getLogger().info("Successfully enabled " + getName() + " " + getVersion() + " by " + getAuthor());
 	}
 
 	@Override
 	public void stop() {
 		remove();
+		dormant.clear();
+		if (dormantTask != null) {
+			dormantTask.cancel();
+			dormantTask = null;
+		}
+		AbilityStats.unload();
 	}
 
 }
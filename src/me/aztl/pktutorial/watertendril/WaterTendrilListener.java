@@ -5,16 +5,16 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerItemHeldEvent;
 import org.bukkit.event.player.PlayerToggleSneakEvent;
 import org.bukkit.inventory.EquipmentSlot;
 
 import com.projectkorra.projectkorra.BendingPlayer;
-import com.projectkorra.projectkorra.ability.CoreAbility;
 
 /**
  * WaterTendrilListener listens for events that might have to do with WaterTendril
  * The objective of a Listener is to narrow it down and do something about it.
- * In this case, we want to narrow down the sneak events and click events.
+ * In this case, we want to narrow down the sneak events, click events and slot changes.
  */
 public class WaterTendrilListener implements Listener {
 	
@@ -46,10 +46,34 @@ public class WaterTendrilListener implements Listener {
 		if (bPlayer == null) return;
 		
 		String abil = bPlayer.getBoundAbilityName();
-		// If they are on WaterTendril slot and they already have an active instance
-		if (abil.equalsIgnoreCase("WaterTendril") && CoreAbility.hasAbility(player, WaterTendril.class)) {
+		// If they are on WaterTendril slot and they have a source selected (a dormant WaterTendril)
+		WaterTendril wt = WaterTendril.getDormant(player);
+		if (abil.equalsIgnoreCase("WaterTendril") && wt != null) {
 			// Can access public instance methods this way
-			CoreAbility.getAbility(player, WaterTendril.class).onClick();
+			wt.onClick();
+		}
+	}
+	
+	/*
+	 * Dormant WaterTendrils aren't progressing, so nothing checks canBend every tick for them.
+	 * Instead we drop the source as soon as the player switches away from WaterTendril.
+	 * This event happens before the slot changes, so we look up what's bound to the new slot.
+	 * ignoreCancelled = true means we skip this if another plugin cancelled the slot change,
+	 * because then the player is still on WaterTendril.
+	 */
+	@EventHandler(ignoreCancelled = true)
+	public void onSlotChange(PlayerItemHeldEvent event) {
+		Player player = event.getPlayer();
+		WaterTendril wt = WaterTendril.getDormant(player);
+		if (wt == null) return;
+		
+		BendingPlayer bPlayer = BendingPlayer.getBendingPlayer(player);
+		if (bPlayer == null) return;
+		
+		// Bending slots start at 1, but inventory slots start at 0
+		String abil = bPlayer.getAbilities().get(event.getNewSlot() + 1);
+		if (abil == null || !abil.equalsIgnoreCase("WaterTendril")) {
+			wt.cancelSource();
 		}
 	}
 